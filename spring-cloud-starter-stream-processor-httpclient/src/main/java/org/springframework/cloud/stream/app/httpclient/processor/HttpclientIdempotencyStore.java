@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.httpclient.processor;
+
+/**
+ * A bounded store of replies keyed by the 64-bit hash of an idempotency key, used to
+ * answer redelivered messages without repeating the HTTP request.
+ */
+public interface HttpclientIdempotencyStore {
+
+	/**
+	 * Return the reply recorded for the key.
+	 * @param key the hashed idempotency key
+	 * @return the reply, or {@code null} if none is recorded or it has expired
+	 */
+	Object get(long key);
+
+	/**
+	 * Record the reply for the key, evicting older entries if the store is full.
+	 * @param key the hashed idempotency key
+	 * @param reply the reply
+	 */
+	void put(long key, Object reply);
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.httpclient.processor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.stream.binder.PollableMessageSource;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Polls a {@link PollableMessageSource} from a fixed number of request slots and hands
+ * each message to the HTTP request flow on the polling thread. A slot fetches its next
+ * message only after the previous HTTP call has completed, so the number of in-flight
+ * messages never exceeds the configured concurrency and the broker keeps everything else.
+ * When the HTTP request flow fails for a polled message, e.g. because the HTTP resource is
+ * down, the source handles the failure itself (error channel, requeue) and still reports
+ * the poll as successful, so the failure is detected in the handler. After such a failure,
+ * or when the poll itself throws, the slot backs off exponentially from the idle interval
+ * up to the maximum back off.
+ */
+class HttpclientPollingConsumer implements SmartLifecycle {
+
+	private static final Log logger = LogFactory.getLog(HttpclientPollingConsumer.class);
+
+	private final PollableMessageSource source;
+
+	private final MessageChannel target;
+
+	private final HttpclientProcessorProperties.Pollable properties;
+
+	private volatile ExecutorService executor;
+
+	private volatile boolean running;
+
+	HttpclientPollingConsumer(PollableMessageSource source, MessageChannel target,
+			HttpclientProcessorProperties.Pollable properties) {
+
+		this.source = source;
+		this.target = target;
+		this.properties = properties;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!this.running) {
+			this.running = true;
+			int concurrency = Math.max(1, this.properties.getConcurrency());
+			this.executor = Executors.newFixedThreadPool(concurrency,
+					new CustomizableThreadFactory("httpclient-poller-"));
+			for (int i = 0; i < concurrency; i++) {
+				this.executor.execute(this::pollLoop);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (this.running) {
+			this.running = false;
+			this.executor.shutdown();
+			try {
+				if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+					this.executor.shutdownNow();
+				}
+			}
+			catch (InterruptedException e) {
+				this.executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	@Override
+	public int getPhase() {
+		return Integer.MAX_VALUE;
+	}
+
+	private void pollLoop() {
+		long idleInterval = this.properties.getIdleInterval().toMillis();
+		long initialBackOff = Math.max(1, idleInterval);
+		long maxBackOff = Math.max(initialBackOff, this.properties.getMaxBackOff().toMillis());
+		long backOff = initialBackOff;
+		AtomicBoolean failed = new AtomicBoolean();
+		while (this.running) {
+			long delay;
+			failed.set(false);
+			try {
+				boolean polled = this.source.poll(message -> {
+					try {
+						this.target.send(message);
+					}
+					catch (RuntimeException e) {
+						failed.set(true);
+						throw e;
+					}
+				});
+				if (failed.get()) {
+					logger.warn("Failed to process polled message; polling again in " + backOff + "ms");
+					delay = backOff;
+					backOff = Math.min(backOff * 2, maxBackOff);
+				}
+				else {
+					delay = polled ? 0 : idleInterval;
+					backOff = initialBackOff;
+				}
+			}
+			catch (Exception e) {
+				logger.error("Failed to poll message; polling again in " + backOff + "ms", e);
+				delay = backOff;
+				backOff = Math.min(backOff * 2, maxBackOff);
+			}
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+}
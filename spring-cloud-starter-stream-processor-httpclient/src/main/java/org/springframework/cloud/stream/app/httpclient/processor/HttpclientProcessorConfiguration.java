@@ -27,10 +27,12 @@ import org.springframework.cloud.stream.messaging.Processor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
 import org.springframework.integration.handler.advice.RequestHandlerRetryAdvice;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
@@ -39,6 +41,11 @@ import org.springframework.retry.support.RetryTemplate;
  * A processor app that makes requests to an HTTP resource and emits the
  * response body as a message payload. This processor can be combined, e.g.,
  * with a time source module to periodically poll results from a HTTP resource.
+ * <p>
+ * With {@code httpclient.pollable.enabled} the input is bound as a
+ * {@link org.springframework.cloud.stream.binder.PollableMessageSource} and a message
+ * is fetched only when one of the {@code httpclient.pollable.concurrency} request
+ * slots is free, propagating back pressure from the HTTP resource to the broker.
  *
  * @author Waldemar Hummer
  * @author Mark Fisher
@@ -49,17 +56,9 @@ import org.springframework.retry.support.RetryTemplate;
  */
 @Configuration
 @Import(HttpclientProcessorFunctionConfiguration.class)
-@EnableBinding(Processor.class)
 public class HttpclientProcessorConfiguration {
 
-	@Bean
-	IntegrationFlow httpClientFlow(Processor processor, Function<Message<?>, Object> httpRequest,
-			ObjectProvider<RequestHandlerRetryAdvice> requestHandlerRetryAdvice) {
-		return IntegrationFlows
-				.from(processor.input())
-				.transform(Message.class, httpRequest::apply, (e) -> requestHandlerRetryAdvice.ifAvailable(e::advice))
-				.channel(processor.output()).get();
-	}
+	static final String POLLED_INPUT_CHANNEL = "httpclientPolledInput";
 
 	@Bean
 	@ConditionalOnProperty(prefix = "httpclient.retry", name = "enabled")
@@ -85,4 +84,51 @@ public class HttpclientProcessorConfiguration {
 		return template;
 	}
 
+	@Configuration
+	@ConditionalOnProperty(prefix = "httpclient.pollable", name = "enabled", havingValue = "false",
+			matchIfMissing = true)
+	@EnableBinding(Processor.class)
+	static class SubscribableInputConfiguration {
+
+		@Bean
+		IntegrationFlow httpClientFlow(Processor processor, Function<Message<?>, Object> httpRequest,
+				ObjectProvider<RequestHandlerRetryAdvice> requestHandlerRetryAdvice) {
+			return IntegrationFlows
+					.from(processor.input())
+					.transform(Message.class, httpRequest::apply,
+							(e) -> requestHandlerRetryAdvice.ifAvailable(e::advice))
+					.channel(processor.output()).get();
+		}
+
+	}
+
+	@Configuration
+	@ConditionalOnProperty(prefix = "httpclient.pollable", name = "enabled")
+	@EnableBinding(HttpclientPollableProcessor.class)
+	static class PollableInputConfiguration {
+
+		@Bean(POLLED_INPUT_CHANNEL)
+		MessageChannel httpclientPolledInput() {
+			return new DirectChannel();
+		}
+
+		@Bean
+		IntegrationFlow httpClientFlow(HttpclientPollableProcessor processor, Function<Message<?>, Object> httpRequest,
+				ObjectProvider<RequestHandlerRetryAdvice> requestHandlerRetryAdvice) {
+			return IntegrationFlows
+					.from(httpclientPolledInput())
+					.transform(Message.class, httpRequest::apply,
+							(e) -> requestHandlerRetryAdvice.ifAvailable(e::advice))
+					.channel(processor.output()).get();
+		}
+
+		@Bean
+		HttpclientPollingConsumer httpclientPollingConsumer(HttpclientPollableProcessor processor,
+				HttpclientProcessorProperties processorProperties) {
+			return new HttpclientPollingConsumer(processor.input(), httpclientPolledInput(),
+					processorProperties.getPollable());
+		}
+
+	}
+
 }
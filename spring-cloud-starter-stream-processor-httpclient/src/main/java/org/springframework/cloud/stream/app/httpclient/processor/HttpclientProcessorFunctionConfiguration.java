@@ -16,23 +16,78 @@
 
 package org.springframework.cloud.stream.app.httpclient.processor;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.stream.app.httpclient.processor.HttpclientProcessorProperties.IdempotencyStoreType;
+import org.springframework.cloud.stream.app.httpclient.processor.HttpclientProcessorProperties.PartialResultPolicy;
+import org.springframework.cloud.stream.app.httpclient.processor.HttpclientProcessorProperties.ReactiveErrorPolicy;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.expression.Expression;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.ObjectUtils;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
 /**
  * A {@link Function} that makes requests to an HTTP resource and emits the
  * response body as a message payload.
+ * <p>
+ * With {@code httpclient.scatter-gather.enabled} the url expression may return a list
+ * of URLs; one request per URL is issued concurrently and the scatter-gather reply
+ * expression is applied against the list of responses, in URL order.
+ * <p>
+ * With {@code httpclient.idempotency.enabled} the reply for each idempotency key is
+ * recorded in a bounded {@link HttpclientIdempotencyStore} and returned for redelivered
+ * messages instead of repeating the request.
+ * <p>
+ * The {@link HttpclientReactiveProcessorFunction} registered as
+ * {@link #REACTIVE_FUNCTION_NAME} makes the same requests with a non-blocking
+ * {@link WebClient}, keeping up to {@code httpclient.reactive.concurrency} of them in
+ * flight. Replies are emitted in completion order; a message whose request fails or
+ * times out is handled according to {@code httpclient.reactive.error-policy}.
+ * <p>
+ * With {@code httpclient.rate-limit.enabled} every blocking request, including each
+ * scatter-gather request, first takes a permit from the {@link HttpclientRateLimiter}.
  *
  * @author Waldemar Hummer
  * @author Mark Fisher
@@ -46,61 +101,279 @@ public class HttpclientProcessorFunctionConfiguration {
 
 	public static final String FUNCTION_NAME = "spring.cloud.streamapp.httpclient.processor";
 
+	public static final String REACTIVE_FUNCTION_NAME = "spring.cloud.streamapp.httpclient.reactive-processor";
+
+	public static final String SCATTER_GATHER_EXECUTOR = "httpclientScatterGatherExecutor";
+
+	private static final Log logger = LogFactory.getLog(HttpclientProcessorFunctionConfiguration.class);
+
+	private static final Set<HttpMethod> BODY_METHODS =
+		EnumSet.of(HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE);
+
+	@Bean
+	public RestTemplate restTemplate(HttpclientProcessorProperties properties) {
+		RestTemplate restTemplate = new RestTemplate();
+		if (properties.getScatterGather().isEnabled()) {
+			/* a cancelled scatter-gather call cannot interrupt blocking socket I/O; time it out instead */
+			int timeout = (int) properties.getScatterGather().getTimeout().toMillis();
+			SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+			requestFactory.setConnectTimeout(timeout);
+			requestFactory.setReadTimeout(timeout);
+			restTemplate.setRequestFactory(requestFactory);
+		}
+		return restTemplate;
+	}
+
+	@Bean(name = SCATTER_GATHER_EXECUTOR)
+	@ConditionalOnProperty(prefix = "httpclient.scatter-gather", name = "enabled")
+	public ThreadPoolTaskExecutor httpclientScatterGatherExecutor(HttpclientProcessorProperties properties) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(properties.getScatterGather().getConcurrency());
+		executor.setMaxPoolSize(properties.getScatterGather().getConcurrency());
+		executor.setQueueCapacity(properties.getScatterGather().getQueueCapacity());
+		executor.setThreadNamePrefix("httpclient-scatter-gather-");
+		return executor;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "httpclient.idempotency", name = "enabled")
+	public HttpclientIdempotencyStore httpclientIdempotencyStore(HttpclientProcessorProperties properties)
+		throws IOException {
+
+		HttpclientProcessorProperties.Idempotency idempotency = properties.getIdempotency();
+		if (idempotency.getStore() == IdempotencyStoreType.MAPPED_FILE) {
+			return new MappedFileIdempotencyStore(Paths.get(idempotency.getFile()), idempotency.getMaxEntries(),
+				idempotency.getSlotSize(), idempotency.getTimeToLive());
+		}
+		return new InMemoryIdempotencyStore(idempotency.getMaxEntries(), idempotency.getTimeToLive());
+	}
+
 	@Bean
-	public RestTemplate restTemplate() {
-		return new RestTemplate();
+	@ConditionalOnProperty(prefix = "httpclient.rate-limit", name = "enabled")
+	public HttpclientRateLimiter httpclientRateLimiter(HttpclientProcessorProperties properties,
+		ObjectProvider<MeterRegistry> meterRegistry) {
+
+		return new HttpclientRateLimiter(properties.getRateLimit(), meterRegistry.getIfAvailable());
 	}
 
 	@Bean(name = FUNCTION_NAME)
 	public HttpclientProcessorFunction httpRequest(RestTemplate restTemplate,
-		HttpclientProcessorProperties properties) {
+		HttpclientProcessorProperties properties,
+		@Qualifier(SCATTER_GATHER_EXECUTOR) ObjectProvider<AsyncTaskExecutor> scatterGatherExecutor,
+		ObjectProvider<HttpclientIdempotencyStore> idempotencyStore,
+		ObjectProvider<HttpclientRateLimiter> rateLimiter) {
 
-		return message -> {
+		Function<RequestEntity<?>, ResponseEntity<?>> exchange =
+			exchange(restTemplate, properties, rateLimiter.getIfAvailable());
+
+		HttpclientProcessorFunction function;
+		if (properties.getScatterGather().isEnabled()) {
+			function = scatterGather(exchange, properties, scatterGatherExecutor.getObject());
+		}
+		else {
+			function = message -> {
+				String url = properties.getUrlExpression().getValue(message, String.class);
+				ResponseEntity<?> response = exchange.apply(createRequest(message, url, properties));
+				return properties.getReplyExpression().getValue(response);
+			};
+		}
+
+		HttpclientIdempotencyStore store = idempotencyStore.getIfAvailable();
+		if (store != null) {
+			return idempotent(function, properties.getIdempotency().getKeyExpression(), store);
+		}
+		return function;
+	}
 
-			/* construct headers */
-			HttpHeaders headers = new HttpHeaders();
-			if (properties.getHeadersExpression() != null) {
-				Map<?, ?> headersMap = properties.getHeadersExpression().getValue(message, Map.class);
-				for (Map.Entry<?, ?> header : headersMap.entrySet()) {
-					if (header.getKey() != null && header.getValue() != null) {
-						headers.add(header.getKey().toString(),
-							header.getValue().toString());
+	@Bean(name = REACTIVE_FUNCTION_NAME)
+	public HttpclientReactiveProcessorFunction reactiveHttpRequest(ObjectProvider<WebClient.Builder> webClientBuilder,
+		HttpclientProcessorProperties properties) {
+
+		WebClient webClient = webClientBuilder.getIfAvailable(WebClient::builder).build();
+		HttpclientProcessorProperties.Reactive reactive = properties.getReactive();
+		return messages -> messages.limitRate(reactive.getPrefetch()).flatMap(message -> Mono.defer(() -> {
+			String url = properties.getUrlExpression().getValue(message, String.class);
+			RequestEntity<?> request = createRequest(message, url, properties);
+			WebClient.RequestBodySpec requestSpec = webClient.method(request.getMethod())
+				.uri(request.getUrl())
+				.headers(headers -> headers.addAll(request.getHeaders()));
+			/* like the HttpURLConnection behind the blocking function, only send a body where one is expected */
+			WebClient.RequestHeadersSpec<?> exchangeSpec =
+				request.getBody() != null && BODY_METHODS.contains(request.getMethod())
+					? requestSpec.syncBody(request.getBody())
+					: requestSpec;
+			return exchangeSpec.retrieve()
+				.toEntity(properties.getExpectedResponseType())
+				.<Message<?>>map(response -> {
+					Object reply = properties.getReplyExpression().getValue(response);
+					if (reply instanceof Message) {
+						return (Message<?>) reply;
 					}
-				}
-			}
+					return MessageBuilder.withPayload(reply).copyHeaders(message.getHeaders()).build();
+				});
+		})
+			.timeout(reactive.getTimeout())
+			.onErrorResume(e -> onReactiveError(message, e, reactive.getErrorPolicy())), reactive.getConcurrency());
+	}
 
-			Class<?> responseType = properties.getExpectedResponseType();
-			HttpMethod method = null;
-			if (properties.getHttpMethodExpression() != null) {
-				method = properties.getHttpMethodExpression().getValue(message, HttpMethod.class);
-			}
-			else {
-				method = properties.getHttpMethod();
+	private static Mono<Message<?>> onReactiveError(Message<?> message, Throwable error, ReactiveErrorPolicy policy) {
+		MessagingException failure = new MessagingException(message, "Failed to process message", error);
+		switch (policy) {
+			case DROP:
+				logger.error("Failed to process message " + message + "; no reply is emitted", error);
+				return Mono.empty();
+			case ERROR_MESSAGE:
+				return Mono.just(new ErrorMessage(failure, message));
+			default:
+				return Mono.error(failure);
+		}
+	}
+
+	private static Function<RequestEntity<?>, ResponseEntity<?>> exchange(RestTemplate restTemplate,
+		HttpclientProcessorProperties properties, HttpclientRateLimiter rateLimiter) {
+
+		if (rateLimiter != null) {
+			return request -> rateLimiter.execute(request,
+				() -> restTemplate.exchange(request, properties.getExpectedResponseType()));
+		}
+		return request -> restTemplate.exchange(request, properties.getExpectedResponseType());
+	}
+
+	private static HttpclientProcessorFunction idempotent(HttpclientProcessorFunction function,
+		Expression keyExpression, HttpclientIdempotencyStore store) {
+
+		return message -> {
+			String idempotencyKey = keyExpression.getValue(message, String.class);
+			if (idempotencyKey == null) {
+				return function.apply(message);
 			}
-			String url = properties.getUrlExpression().getValue(message, String.class);
-			Object body = null;
-			if (properties.getBody() != null) {
-				body = properties.getBody();
+			long key = hash(idempotencyKey);
+			Object reply = store.get(key);
+			if (reply == null) {
+				reply = function.apply(message);
+				if (reply != null) {
+					store.put(key, reply);
+				}
 			}
-			else if (properties.getBodyExpression() != null) {
-				body = properties.getBodyExpression().getValue(message);
+			return reply;
+		};
+	}
+
+	/**
+	 * Reduce the idempotency key to the leading 64 bits of its SHA-256 digest, keeping
+	 * the store footprint independent of the key length.
+	 */
+	private static long hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return ByteBuffer.wrap(digest).getLong();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	private static HttpclientProcessorFunction scatterGather(Function<RequestEntity<?>, ResponseEntity<?>> exchange,
+		HttpclientProcessorProperties properties, AsyncTaskExecutor executor) {
+
+		HttpclientProcessorProperties.ScatterGather scatterGather = properties.getScatterGather();
+		return message -> {
+			List<Future<ResponseEntity<?>>> calls = new ArrayList<>();
+			try {
+				for (Object url : urls(message, properties)) {
+					RequestEntity<?> request = createRequest(message, url.toString(), properties);
+					calls.add(executor.submit(() -> exchange.apply(request)));
+				}
 			}
-			else {
-				body = message.getPayload();
+			catch (RuntimeException e) {
+				calls.forEach(c -> c.cancel(true));
+				throw e;
 			}
 
-			URI uri;
-			try {
-				uri = new URI(url);
+			/* all requests are in flight; each gets the same deadline */
+			long deadline = System.nanoTime() + scatterGather.getTimeout().toNanos();
+			List<ResponseEntity<?>> responses = new ArrayList<>(calls.size());
+			for (Future<ResponseEntity<?>> call : calls) {
+				try {
+					responses.add(call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+				}
+				catch (InterruptedException e) {
+					calls.forEach(c -> c.cancel(true));
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while gathering http responses", e);
+				}
+				catch (ExecutionException | TimeoutException e) {
+					if (scatterGather.getPartialResultPolicy() == PartialResultPolicy.FAIL) {
+						calls.forEach(c -> c.cancel(true));
+						if (e.getCause() instanceof RuntimeException) {
+							throw (RuntimeException) e.getCause();
+						}
+						throw new IllegalStateException("Failed to gather http response: " + e, e);
+					}
+					call.cancel(true);
+					responses.add(null);
+				}
 			}
+			return scatterGather.getReplyExpression().getValue(responses);
+		};
+	}
+
+	private static Collection<?> urls(Message<?> message, HttpclientProcessorProperties properties) {
+		Object urls = properties.getUrlExpression().getValue(message);
+		if (urls instanceof Collection) {
+			return (Collection<?>) urls;
+		}
+		else if (ObjectUtils.isArray(urls)) {
+			return Arrays.asList(ObjectUtils.toObjectArray(urls));
+		}
+		else {
+			return Collections.singletonList(urls);
+		}
+	}
 
-			catch (URISyntaxException e) {
-				throw new IllegalStateException(e.getMessage(), e);
+	private static RequestEntity<?> createRequest(Message<?> message, String url,
+		HttpclientProcessorProperties properties) {
+
+		/* construct headers */
+		HttpHeaders headers = new HttpHeaders();
+		if (properties.getHeadersExpression() != null) {
+			Map<?, ?> headersMap = properties.getHeadersExpression().getValue(message, Map.class);
+			for (Map.Entry<?, ?> header : headersMap.entrySet()) {
+				if (header.getKey() != null && header.getValue() != null) {
+					headers.add(header.getKey().toString(),
+						header.getValue().toString());
+				}
 			}
+		}
 
-			RequestEntity<?> request = new RequestEntity<>(body, headers, method, uri);
-			ResponseEntity<?> response = restTemplate.exchange(request, responseType);
-			return properties.getReplyExpression().getValue(response);
-		};
+		HttpMethod method = null;
+		if (properties.getHttpMethodExpression() != null) {
+			method = properties.getHttpMethodExpression().getValue(message, HttpMethod.class);
+		}
+		else {
+			method = properties.getHttpMethod();
+		}
+		Object body = null;
+		if (properties.getBody() != null) {
+			body = properties.getBody();
+		}
+		else if (properties.getBodyExpression() != null) {
+			body = properties.getBodyExpression().getValue(message);
+		}
+		else {
+			body = message.getPayload();
+		}
+
+		URI uri;
+		try {
+			uri = new URI(url);
+		}
+
+		catch (URISyntaxException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		return new RequestEntity<>(body, headers, method, uri);
 	}
+
 }
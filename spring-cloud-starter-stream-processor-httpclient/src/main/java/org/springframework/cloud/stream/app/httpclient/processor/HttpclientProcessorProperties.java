@@ -92,6 +92,16 @@ public class HttpclientProcessorProperties {
 
 	private final Retry retry = new Retry();
 
+	private final Pollable pollable = new Pollable();
+
+	private final ScatterGather scatterGather = new ScatterGather();
+
+	private final Idempotency idempotency = new Idempotency();
+
+	private final Reactive reactive = new Reactive();
+
+	private final RateLimit rateLimit = new RateLimit();
+
 	public void setUrl(String url) {
 		this.url = url;
 	}
@@ -172,6 +182,26 @@ public class HttpclientProcessorProperties {
 		return this.retry;
 	}
 
+	public Pollable getPollable() {
+		return this.pollable;
+	}
+
+	public ScatterGather getScatterGather() {
+		return this.scatterGather;
+	}
+
+	public Idempotency getIdempotency() {
+		return this.idempotency;
+	}
+
+	public Reactive getReactive() {
+		return this.reactive;
+	}
+
+	public RateLimit getRateLimit() {
+		return this.rateLimit;
+	}
+
 	@AssertTrue(message = "Exactly one of 'url' or 'urlExpression' is required")
 	public boolean isExactlyOneUrl() {
 		return url == null ^ urlExpression == null;
@@ -182,6 +212,23 @@ public class HttpclientProcessorProperties {
 		return body == null || bodyExpression == null;
 	}
 
+	@AssertTrue(message = "'idempotency.keyExpression' is required when idempotency is enabled")
+	public boolean isIdempotencyKeyPresent() {
+		return !idempotency.isEnabled() || idempotency.getKeyExpression() != null;
+	}
+
+	@AssertTrue(message = "'idempotency.file' is required for the MAPPED_FILE idempotency store")
+	public boolean isIdempotencyFilePresent() {
+		return !idempotency.isEnabled() || idempotency.getStore() != IdempotencyStoreType.MAPPED_FILE
+				|| idempotency.getFile() != null;
+	}
+
+	@AssertTrue(message = "'rateLimit.permitsPerSecond', 'rateLimit.burst' and 'rateLimit.maxKeys' must be positive")
+	public boolean isRateLimitPositive() {
+		return !rateLimit.isEnabled() || (rateLimit.getPermitsPerSecond() > 0 && rateLimit.getBurst() > 0
+				&& rateLimit.getMaxKeys() > 0);
+	}
+
 
 	public static class Retry {
 
@@ -252,4 +299,463 @@ public class HttpclientProcessorProperties {
 
 	}
 
+	public static class Pollable {
+
+		/**
+		 * Whether to consume the input as a pollable source, fetching a message only when a request slot is free.
+		 */
+		private boolean enabled;
+
+		/**
+		 * Number of concurrent request slots, each polling the input for the next message.
+		 */
+		private int concurrency = 1;
+
+		/**
+		 * Duration to wait before polling again when no message is available.
+		 */
+		private Duration idleInterval = Duration.ofMillis(100);
+
+		/**
+		 * Maximum duration to wait before polling again after consecutive failures.
+		 */
+		private Duration maxBackOff = Duration.ofSeconds(10);
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getConcurrency() {
+			return this.concurrency;
+		}
+
+		public void setConcurrency(int concurrency) {
+			this.concurrency = concurrency;
+		}
+
+		public Duration getIdleInterval() {
+			return this.idleInterval;
+		}
+
+		public void setIdleInterval(Duration idleInterval) {
+			this.idleInterval = idleInterval;
+		}
+
+		public Duration getMaxBackOff() {
+			return this.maxBackOff;
+		}
+
+		public void setMaxBackOff(Duration maxBackOff) {
+			this.maxBackOff = maxBackOff;
+		}
+
+	}
+
+	public static class ScatterGather {
+
+		/**
+		 * Whether to issue one request per URL returned by the url expression and gather the responses.
+		 */
+		private boolean enabled;
+
+		/**
+		 * Maximum number of requests executed concurrently across all inbound messages.
+		 */
+		private int concurrency = 10;
+
+		/**
+		 * Maximum number of requests waiting for a free thread; further messages are rejected.
+		 */
+		private int queueCapacity = 100;
+
+		/**
+		 * Maximum duration to wait for each response, measured from when the requests are issued.
+		 * Also applied as the connect and read timeout of the http client.
+		 */
+		private Duration timeout = Duration.ofSeconds(30);
+
+		/**
+		 * How to handle requests which fail or time out.
+		 */
+		private PartialResultPolicy partialResultPolicy = PartialResultPolicy.FAIL;
+
+		/**
+		 * A SpEL expression used to compute the final result, applied against the list of http responses.
+		 */
+		private Expression replyExpression = new SpelExpressionParser().parseExpression("![#this?.body]");
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getConcurrency() {
+			return this.concurrency;
+		}
+
+		public void setConcurrency(int concurrency) {
+			this.concurrency = concurrency;
+		}
+
+		public int getQueueCapacity() {
+			return this.queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public Duration getTimeout() {
+			return this.timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		public PartialResultPolicy getPartialResultPolicy() {
+			return this.partialResultPolicy;
+		}
+
+		public void setPartialResultPolicy(PartialResultPolicy partialResultPolicy) {
+			this.partialResultPolicy = partialResultPolicy;
+		}
+
+		public Expression getReplyExpression() {
+			return this.replyExpression;
+		}
+
+		public void setReplyExpression(Expression replyExpression) {
+			this.replyExpression = replyExpression;
+		}
+
+	}
+
+	public static class Idempotency {
+
+		/**
+		 * Whether to record replies by idempotency key and return them for redelivered messages.
+		 */
+		private boolean enabled;
+
+		/**
+		 * A SpEL expression against incoming message to derive its idempotency key.
+		 */
+		private Expression keyExpression;
+
+		/**
+		 * Where the recorded replies are kept.
+		 */
+		private IdempotencyStoreType store = IdempotencyStoreType.MEMORY;
+
+		/**
+		 * Maximum number of recorded replies; older ones are evicted when the store is full.
+		 */
+		private int maxEntries = 10000;
+
+		/**
+		 * How long a recorded reply is returned for a repeated key.
+		 */
+		private Duration timeToLive = Duration.ofHours(1);
+
+		/**
+		 * The file backing the MAPPED_FILE store.
+		 */
+		private String file;
+
+		/**
+		 * Size in bytes of each MAPPED_FILE entry; replies which do not fit are not recorded.
+		 */
+		private int slotSize = 1024;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Expression getKeyExpression() {
+			return this.keyExpression;
+		}
+
+		public void setKeyExpression(Expression keyExpression) {
+			this.keyExpression = keyExpression;
+		}
+
+		public IdempotencyStoreType getStore() {
+			return this.store;
+		}
+
+		public void setStore(IdempotencyStoreType store) {
+			this.store = store;
+		}
+
+		public int getMaxEntries() {
+			return this.maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		public Duration getTimeToLive() {
+			return this.timeToLive;
+		}
+
+		public void setTimeToLive(Duration timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+
+		public String getFile() {
+			return this.file;
+		}
+
+		public void setFile(String file) {
+			this.file = file;
+		}
+
+		public int getSlotSize() {
+			return this.slotSize;
+		}
+
+		public void setSlotSize(int slotSize) {
+			this.slotSize = slotSize;
+		}
+
+	}
+
+	public static class Reactive {
+
+		/**
+		 * Maximum number of requests in flight for the reactive function.
+		 */
+		private int concurrency = 16;
+
+		/**
+		 * Number of messages requested from upstream in advance by the reactive function.
+		 */
+		private int prefetch = 32;
+
+		/**
+		 * Maximum duration to wait for the response to a request of the reactive function.
+		 */
+		private Duration timeout = Duration.ofSeconds(30);
+
+		/**
+		 * What the reactive function emits for a message whose request fails or times out.
+		 */
+		private ReactiveErrorPolicy errorPolicy = ReactiveErrorPolicy.ERROR_MESSAGE;
+
+		public int getConcurrency() {
+			return this.concurrency;
+		}
+
+		public void setConcurrency(int concurrency) {
+			this.concurrency = concurrency;
+		}
+
+		public int getPrefetch() {
+			return this.prefetch;
+		}
+
+		public void setPrefetch(int prefetch) {
+			this.prefetch = prefetch;
+		}
+
+		public Duration getTimeout() {
+			return this.timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		public ReactiveErrorPolicy getErrorPolicy() {
+			return this.errorPolicy;
+		}
+
+		public void setErrorPolicy(ReactiveErrorPolicy errorPolicy) {
+			this.errorPolicy = errorPolicy;
+		}
+
+	}
+
+	public static class RateLimit {
+
+		/**
+		 * Whether to rate limit and bulkhead requests per key.
+		 */
+		private boolean enabled;
+
+		/**
+		 * A SpEL expression against the outgoing http request to derive the key requests are limited by.
+		 */
+		private Expression keyExpression = new SpelExpressionParser().parseExpression("url.host");
+
+		/**
+		 * Sustained number of requests per second allowed for each key.
+		 */
+		private double permitsPerSecond = 10;
+
+		/**
+		 * Number of requests allowed at once for a key which has been idle.
+		 */
+		private int burst = 10;
+
+		/**
+		 * Maximum duration a request waits for a permit before it is rejected.
+		 */
+		private Duration maxWait = Duration.ofSeconds(5);
+
+		/**
+		 * Maximum number of concurrent requests for each key; 0 for no limit.
+		 */
+		private int maxConcurrentCalls;
+
+		/**
+		 * Maximum number of keys tracked; beyond that, keys without calls in flight and with a
+		 * full token bucket are dropped.
+		 */
+		private int maxKeys = 1000;
+
+		/**
+		 * Whether a 429 response pauses the key for the duration given by its Retry-After header.
+		 */
+		private boolean adaptive = true;
+
+		/**
+		 * Pause applied after a 429 response without a usable Retry-After header.
+		 */
+		private Duration defaultRetryAfter = Duration.ofSeconds(1);
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Expression getKeyExpression() {
+			return this.keyExpression;
+		}
+
+		public void setKeyExpression(Expression keyExpression) {
+			this.keyExpression = keyExpression;
+		}
+
+		public double getPermitsPerSecond() {
+			return this.permitsPerSecond;
+		}
+
+		public void setPermitsPerSecond(double permitsPerSecond) {
+			this.permitsPerSecond = permitsPerSecond;
+		}
+
+		public int getBurst() {
+			return this.burst;
+		}
+
+		public void setBurst(int burst) {
+			this.burst = burst;
+		}
+
+		public Duration getMaxWait() {
+			return this.maxWait;
+		}
+
+		public void setMaxWait(Duration maxWait) {
+			this.maxWait = maxWait;
+		}
+
+		public int getMaxConcurrentCalls() {
+			return this.maxConcurrentCalls;
+		}
+
+		public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+			this.maxConcurrentCalls = maxConcurrentCalls;
+		}
+
+		public int getMaxKeys() {
+			return this.maxKeys;
+		}
+
+		public void setMaxKeys(int maxKeys) {
+			this.maxKeys = maxKeys;
+		}
+
+		public boolean isAdaptive() {
+			return this.adaptive;
+		}
+
+		public void setAdaptive(boolean adaptive) {
+			this.adaptive = adaptive;
+		}
+
+		public Duration getDefaultRetryAfter() {
+			return this.defaultRetryAfter;
+		}
+
+		public void setDefaultRetryAfter(Duration defaultRetryAfter) {
+			this.defaultRetryAfter = defaultRetryAfter;
+		}
+
+	}
+
+	public enum PartialResultPolicy {
+
+		/**
+		 * Fail the inbound message if any request fails or times out.
+		 */
+		FAIL,
+
+		/**
+		 * Gather the remaining responses, using {@code null} in place of each failed one.
+		 */
+		PARTIAL
+
+	}
+
+	public enum IdempotencyStoreType {
+
+		/**
+		 * A bounded in-memory map, lost on restart.
+		 */
+		MEMORY,
+
+		/**
+		 * A fixed-size memory-mapped file which survives restarts.
+		 */
+		MAPPED_FILE
+
+	}
+
+	public enum ReactiveErrorPolicy {
+
+		/**
+		 * Emit an {@code ErrorMessage} carrying the failure and the inbound message, and keep going.
+		 */
+		ERROR_MESSAGE,
+
+		/**
+		 * Log the failure and emit no reply for the message, and keep going.
+		 */
+		DROP,
+
+		/**
+		 * Terminate the reply stream with the failure.
+		 */
+		FAIL
+
+	}
+
 }
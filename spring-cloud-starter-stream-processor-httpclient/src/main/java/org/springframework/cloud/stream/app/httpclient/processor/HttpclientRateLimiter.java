@@ -0,0 +1,318 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.httpclient.processor;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * Limits the requests made for each key, derived from the outgoing request by the
+ * {@code httpclient.rate-limit.key-expression} (the target host by default), with a
+ * token bucket and an optional bulkhead of concurrent calls. The limits for a key are
+ * shared by all threads calling {@link #execute(RequestEntity, Supplier)}.
+ * <p>
+ * The token bucket is kept as a single theoretical arrival time updated by
+ * compare-and-set, so acquiring a permit never locks. A {@code 429} response pushes
+ * that time out by the {@code Retry-After} delay when the limiter is adaptive.
+ * <p>
+ * When a {@link MeterRegistry} is available, the time spent waiting for a permit is
+ * recorded as the {@code httpclient.rate-limit.wait} timer, and rejected requests and
+ * {@code 429} responses as the {@code httpclient.rate-limit.rejected} and
+ * {@code httpclient.rate-limit.throttled} counters, all tagged with the key.
+ * <p>
+ * Each call holds a reference to the limits of its key from before it waits for a
+ * permit until it completes, and references are taken and released with atomic updates
+ * of the key's map entry. Beyond {@code httpclient.rate-limit.max-keys} keys, those
+ * without references and with a full token bucket are dropped together with their
+ * meters, so a dropped key is recreated in exactly the state it was dropped in and two
+ * calls for one key always share the same bucket and bulkhead. Keys still recovering
+ * from recent calls are kept, so the map may briefly exceed the maximum.
+ */
+public class HttpclientRateLimiter {
+
+	private static final String WAIT_METER = "httpclient.rate-limit.wait";
+
+	private static final String REJECTED_METER = "httpclient.rate-limit.rejected";
+
+	private static final String THROTTLED_METER = "httpclient.rate-limit.throttled";
+
+	private static final String DEFAULT_KEY = "unknown";
+
+	private final HttpclientProcessorProperties.RateLimit properties;
+
+	private final MeterRegistry meterRegistry;
+
+	private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+	public HttpclientRateLimiter(HttpclientProcessorProperties.RateLimit properties, MeterRegistry meterRegistry) {
+		this.properties = properties;
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Perform the call once a permit for the request key is available.
+	 * @param request the outgoing request, used to derive the key
+	 * @param call the call performing the request
+	 * @param <T> the call result type
+	 * @return the call result
+	 * @throws IllegalStateException if no permit is available within the maximum wait
+	 */
+	public <T> T execute(RequestEntity<?> request, Supplier<T> call) {
+		String key = key(request);
+		Limit limit = acquire(key);
+		try {
+			return execute(key, limit, call);
+		}
+		finally {
+			release(key);
+		}
+	}
+
+	private <T> T execute(String key, Limit limit, Supplier<T> call) {
+		long start = System.nanoTime();
+		long maxWait = this.properties.getMaxWait().toNanos();
+		boolean bulkheadAcquired = false;
+		try {
+			/* take the bulkhead first so a request rejected by it does not use up rate quota */
+			if (limit.bulkhead != null) {
+				if (!limit.bulkhead.tryAcquire(maxWait, TimeUnit.NANOSECONDS)) {
+					throw reject(key, "bulkhead");
+				}
+				bulkheadAcquired = true;
+			}
+			long wait = limit.bucket.reserve(Math.max(0, maxWait - (System.nanoTime() - start)));
+			if (wait < 0) {
+				throw reject(key, "rate-limit");
+			}
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+		catch (InterruptedException e) {
+			if (bulkheadAcquired) {
+				limit.bulkhead.release();
+			}
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a permit for '" + key + "'", e);
+		}
+		catch (RuntimeException e) {
+			if (bulkheadAcquired) {
+				limit.bulkhead.release();
+			}
+			throw e;
+		}
+		finally {
+			if (this.meterRegistry != null) {
+				this.meterRegistry.timer(WAIT_METER, "key", key)
+						.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		try {
+			return call.get();
+		}
+		catch (HttpClientErrorException e) {
+			if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+				if (this.meterRegistry != null) {
+					this.meterRegistry.counter(THROTTLED_METER, "key", key).increment();
+				}
+				if (this.properties.isAdaptive()) {
+					limit.bucket.pause(retryAfter(e.getResponseHeaders()).toNanos());
+				}
+			}
+			throw e;
+		}
+		finally {
+			if (limit.bulkhead != null) {
+				limit.bulkhead.release();
+			}
+		}
+	}
+
+	/**
+	 * Derive the key, falling back to the raw authority of the URL when the key
+	 * expression yields {@code null}, e.g. for a host name {@link java.net.URI} cannot parse.
+	 */
+	private String key(RequestEntity<?> request) {
+		String key = this.properties.getKeyExpression().getValue(request, String.class);
+		if (key == null && request.getUrl() != null) {
+			key = request.getUrl().getRawAuthority();
+		}
+		return key != null ? key : DEFAULT_KEY;
+	}
+
+	private Limit acquire(String key) {
+		Limit limit = this.limits.compute(key, (k, existing) -> {
+			Limit acquired = existing != null ? existing : new Limit();
+			acquired.references++;
+			return acquired;
+		});
+		if (this.limits.size() > this.properties.getMaxKeys()) {
+			evict();
+		}
+		return limit;
+	}
+
+	private void release(String key) {
+		this.limits.computeIfPresent(key, (k, limit) -> {
+			limit.references--;
+			return limit;
+		});
+	}
+
+	/**
+	 * Drop keys without references whose token bucket is full, so dropping them loses no
+	 * state. Each key is checked and removed under its map entry's lock, so it cannot be
+	 * acquired while it is being dropped.
+	 */
+	private void evict() {
+		for (String key : this.limits.keySet()) {
+			if (this.limits.size() <= this.properties.getMaxKeys()) {
+				return;
+			}
+			this.limits.computeIfPresent(key, (k, limit) -> {
+				if (limit.references > 0 || !limit.bucket.isIdle()) {
+					return limit;
+				}
+				removeMeters(k);
+				return null;
+			});
+		}
+	}
+
+	private void removeMeters(String key) {
+		if (this.meterRegistry != null) {
+			for (String name : new String[] { WAIT_METER, REJECTED_METER, THROTTLED_METER }) {
+				this.meterRegistry.find(name).tag("key", key).meters().forEach(this.meterRegistry::remove);
+			}
+		}
+	}
+
+	private IllegalStateException reject(String key, String reason) {
+		if (this.meterRegistry != null) {
+			this.meterRegistry.counter(REJECTED_METER, "key", key, "reason", reason).increment();
+		}
+		return new IllegalStateException("No " + reason + " permit available for '" + key + "' within "
+				+ this.properties.getMaxWait());
+	}
+
+	private Duration retryAfter(HttpHeaders headers) {
+		String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+		if (retryAfter != null) {
+			try {
+				return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+			}
+			catch (NumberFormatException e) {
+				try {
+					ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+					Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+					return delay.isNegative() ? Duration.ZERO : delay;
+				}
+				catch (DateTimeParseException ex) {
+					// fall back to the default
+				}
+			}
+		}
+		return this.properties.getDefaultRetryAfter();
+	}
+
+	private final class Limit {
+
+		private final TokenBucket bucket;
+
+		private final Semaphore bulkhead;
+
+		/* calls holding these limits; only read and written while holding the map entry */
+		private int references;
+
+		Limit() {
+			HttpclientProcessorProperties.RateLimit properties = HttpclientRateLimiter.this.properties;
+			this.bucket = new TokenBucket(properties.getPermitsPerSecond(), properties.getBurst());
+			this.bulkhead = properties.getMaxConcurrentCalls() > 0
+					? new Semaphore(properties.getMaxConcurrentCalls(), true)
+					: null;
+		}
+
+	}
+
+	/**
+	 * A token bucket in its virtual scheduling form: a permit is available once now is
+	 * at most {@code burst - 1} intervals before the theoretical arrival time, and each
+	 * permit pushes that time one interval further.
+	 */
+	static final class TokenBucket {
+
+		private final long interval;
+
+		private final long capacity;
+
+		private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+		TokenBucket(double permitsPerSecond, int burst) {
+			this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+			this.capacity = this.interval * burst;
+		}
+
+		/**
+		 * Reserve a permit.
+		 * @param maxWait the maximum nanoseconds the caller is willing to wait
+		 * @return the nanoseconds to wait before using the permit, or -1 if that would
+		 * exceed {@code maxWait} and no permit has been reserved
+		 */
+		long reserve(long maxWait) {
+			while (true) {
+				long now = System.nanoTime();
+				long current = this.theoreticalArrival.get();
+				long base = Math.max(current, now);
+				long wait = base - (this.capacity - this.interval) - now;
+				if (wait > maxWait) {
+					return -1;
+				}
+				if (this.theoreticalArrival.compareAndSet(current, base + this.interval)) {
+					return Math.max(0, wait);
+				}
+			}
+		}
+
+		boolean isIdle() {
+			return this.theoreticalArrival.get() - System.nanoTime() <= 0;
+		}
+
+		/**
+		 * Hold back further permits until {@code delay} nanoseconds from now.
+		 */
+		void pause(long delay) {
+			long until = System.nanoTime() + delay + this.capacity - this.interval;
+			this.theoreticalArrival.accumulateAndGet(until, Math::max);
+		}
+
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.httpclient.processor;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link HttpclientIdempotencyStore} holding at most {@code maxEntries} replies in
+ * memory, evicting the least recently used one first.
+ */
+public class InMemoryIdempotencyStore implements HttpclientIdempotencyStore {
+
+	private final Map<Long, Entry> entries;
+
+	private final long timeToLive;
+
+	public InMemoryIdempotencyStore(int maxEntries, Duration timeToLive) {
+		this.timeToLive = timeToLive.toMillis();
+		this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				return size() > maxEntries;
+			}
+
+		};
+	}
+
+	@Override
+	public synchronized Object get(long key) {
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAt < System.currentTimeMillis()) {
+			this.entries.remove(key);
+			return null;
+		}
+		return entry.reply;
+	}
+
+	@Override
+	public synchronized void put(long key, Object reply) {
+		this.entries.put(key, new Entry(reply, System.currentTimeMillis() + this.timeToLive));
+	}
+
+	private static final class Entry {
+
+		private final Object reply;
+
+		private final long expiresAt;
+
+		Entry(Object reply, long expiresAt) {
+			this.reply = reply;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.httpclient.processor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * An {@link HttpclientIdempotencyStore} backed by a fixed-size memory-mapped file, so
+ * that recorded replies survive a restart. The file starts with a header recording its
+ * format, slot count and slot size, followed by an open-addressing table of
+ * {@code maxEntries} slots of {@code slotSize} bytes, each holding the key hash, the
+ * expiry time, the reply type and the reply bytes. A key is looked up in a short run of
+ * slots starting at its hash; when the run is full the entry expiring first is replaced.
+ * Only {@code String} (stored as UTF-8) and {@code byte[]} replies are recorded, so
+ * nothing read back from the file is ever deserialized into arbitrary objects; other
+ * replies, and replies which do not fit in a slot, are not recorded.
+ * <p>
+ * The file is locked for as long as the store is open, and opening a file which is
+ * already locked, e.g. by another instance sharing the volume, fails. A file whose
+ * header does not match the configured layout is cleared on open, and a slot which
+ * cannot be read back, e.g. after a torn write, is treated as a miss.
+ */
+public class MappedFileIdempotencyStore implements HttpclientIdempotencyStore, Closeable {
+
+	private static final Log logger = LogFactory.getLog(MappedFileIdempotencyStore.class);
+
+	private static final int MAGIC = 0x48434944;
+
+	private static final int VERSION = 2;
+
+	private static final int FILE_HEADER_SIZE = 4 + 4 + 4 + 4;
+
+	private static final int SLOT_HEADER_SIZE = 8 + 8 + 4 + 1;
+
+	private static final byte STRING_REPLY = 1;
+
+	private static final byte BYTES_REPLY = 2;
+
+	private static final int PROBES = 8;
+
+	private static final long EMPTY = 0L;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final int slots;
+
+	private final int slotSize;
+
+	private final long timeToLive;
+
+	public MappedFileIdempotencyStore(Path file, int maxEntries, int slotSize, Duration timeToLive)
+			throws IOException {
+
+		Assert.isTrue(maxEntries > 0, "'maxEntries' must be positive");
+		Assert.isTrue(slotSize > SLOT_HEADER_SIZE, "'slotSize' must be greater than " + SLOT_HEADER_SIZE);
+		long size = FILE_HEADER_SIZE + (long) maxEntries * slotSize;
+		Assert.isTrue(size <= Integer.MAX_VALUE,
+				"'maxEntries' * 'slotSize' must not exceed " + (Integer.MAX_VALUE - FILE_HEADER_SIZE) + " bytes");
+		this.slots = maxEntries;
+		this.slotSize = slotSize;
+		this.timeToLive = timeToLive.toMillis();
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		lock(file);
+		boolean compatible = this.channel.size() == size;
+		if (!compatible) {
+			/* truncating first guarantees the remapped table reads as all empty slots */
+			this.channel.truncate(0);
+		}
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		if (compatible && !hasHeader()) {
+			logger.warn("Clearing idempotency store " + file + " as it was written with a different layout");
+			for (int i = FILE_HEADER_SIZE; i < size; i++) {
+				this.buffer.put(i, (byte) 0);
+			}
+		}
+		this.buffer.putInt(0, MAGIC);
+		this.buffer.putInt(4, VERSION);
+		this.buffer.putInt(8, this.slots);
+		this.buffer.putInt(12, this.slotSize);
+	}
+
+	@Override
+	public synchronized Object get(long key) {
+		long hash = nonEmpty(key);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < PROBES; i++) {
+			int offset = offset(hash, i);
+			if (this.buffer.getLong(offset) == hash) {
+				long expiresAt = this.buffer.getLong(offset + 8);
+				int length = this.buffer.getInt(offset + 16);
+				byte type = this.buffer.get(offset + 20);
+				if (expiresAt < now || expiresAt - now > this.timeToLive
+						|| length < 0 || length > this.slotSize - SLOT_HEADER_SIZE
+						|| (type != STRING_REPLY && type != BYTES_REPLY)) {
+					return null;
+				}
+				byte[] data = new byte[length];
+				for (int j = 0; j < length; j++) {
+					data[j] = this.buffer.get(offset + SLOT_HEADER_SIZE + j);
+				}
+				return type == STRING_REPLY ? new String(data, StandardCharsets.UTF_8) : data;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized void put(long key, Object reply) {
+		byte type;
+		byte[] data;
+		if (reply instanceof String) {
+			type = STRING_REPLY;
+			data = ((String) reply).getBytes(StandardCharsets.UTF_8);
+		}
+		else if (reply instanceof byte[]) {
+			type = BYTES_REPLY;
+			data = (byte[]) reply;
+		}
+		else {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Not recording reply of type " + reply.getClass().getName()
+						+ " as only String and byte[] replies are supported");
+			}
+			return;
+		}
+		if (data.length > this.slotSize - SLOT_HEADER_SIZE) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Not recording reply of " + data.length + " bytes as it exceeds the slot size");
+			}
+			return;
+		}
+		long hash = nonEmpty(key);
+		int offset = victim(hash);
+		/* the hash is written last so a torn write leaves the slot empty rather than half filled */
+		this.buffer.putLong(offset, EMPTY);
+		this.buffer.putLong(offset + 8, System.currentTimeMillis() + this.timeToLive);
+		this.buffer.putInt(offset + 16, data.length);
+		this.buffer.put(offset + 20, type);
+		for (int j = 0; j < data.length; j++) {
+			this.buffer.put(offset + SLOT_HEADER_SIZE + j, data[j]);
+		}
+		this.buffer.putLong(offset, hash);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.buffer.force();
+		this.channel.close();
+	}
+
+	private void lock(Path file) throws IOException {
+		FileLock lock;
+		try {
+			lock = this.channel.tryLock();
+		}
+		catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if (lock == null) {
+			this.channel.close();
+			throw new IllegalStateException("Idempotency store " + file + " is locked by another store; each instance needs its own file");
+		}
+	}
+
+	private boolean hasHeader() {
+		return this.buffer.getInt(0) == MAGIC && this.buffer.getInt(4) == VERSION
+				&& this.buffer.getInt(8) == this.slots && this.buffer.getInt(12) == this.slotSize;
+	}
+
+	/**
+	 * Pick the slot for the key: its existing slot, else an empty one, else the one
+	 * expiring first.
+	 */
+	private int victim(long hash) {
+		int victim = 0;
+		long victimExpiresAt = Long.MAX_VALUE;
+		for (int i = 0; i < PROBES; i++) {
+			int offset = offset(hash, i);
+			long slotHash = this.buffer.getLong(offset);
+			if (slotHash == hash) {
+				return offset;
+			}
+			long expiresAt = slotHash == EMPTY ? Long.MIN_VALUE : this.buffer.getLong(offset + 8);
+			if (expiresAt < victimExpiresAt) {
+				victim = offset;
+				victimExpiresAt = expiresAt;
+			}
+		}
+		return victim;
+	}
+
+	private int offset(long hash, int probe) {
+		return FILE_HEADER_SIZE + (int) (((hash & Long.MAX_VALUE) % this.slots + probe) % this.slots) * this.slotSize;
+	}
+
+	private static long nonEmpty(long key) {
+		return key == EMPTY ? 1L : key;
+	}
+
+}
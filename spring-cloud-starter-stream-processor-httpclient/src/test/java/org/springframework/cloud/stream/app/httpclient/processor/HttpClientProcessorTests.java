@@ -18,17 +18,47 @@ package org.springframework.cloud.stream.app.httpclient.processor;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
 import static org.springframework.cloud.stream.test.matcher.MessageQueueMatcher.receivesPayloadThat;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.hamcrest.Matchers;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import reactor.core.publisher.Flux;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -36,11 +66,23 @@ import org.springframework.boot.actuate.autoconfigure.security.servlet.Managemen
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.binder.PollableMessageSource;
 import org.springframework.cloud.stream.messaging.Processor;
 import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.handler.advice.RequestHandlerRetryAdvice;
 import org.springframework.integration.test.util.TestUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.GenericMessage;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
@@ -220,10 +262,549 @@ public abstract class HttpClientProcessorTests {
 
 	}
 
+	/**
+	 * The test binder cannot bind a {@code PollableMessageSource}, so the polling consumer
+	 * is driven by a mock source and hands messages to the subscribable input, which
+	 * carries them through the same http request flow as in pollable mode.
+	 */
+	@TestPropertySource(properties = "httpclient.urlExpression= " + BASE_URL + " + '/' + payload")
+	public static class TestPollingConsumerTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testPolledMessageReachesOutput() {
+			AtomicBoolean delivered = new AtomicBoolean();
+			PollableMessageSource source = mock(PollableMessageSource.class);
+			given(source.poll(any(MessageHandler.class))).willAnswer(invocation -> {
+				if (delivered.compareAndSet(false, true)) {
+					invocation.<MessageHandler>getArgument(0).handleMessage(new GenericMessage<Object>("greet"));
+					return true;
+				}
+				return false;
+			});
+			HttpclientPollingConsumer consumer =
+					new HttpclientPollingConsumer(source, channels.input(), new HttpclientProcessorProperties.Pollable());
+			consumer.start();
+			try {
+				assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("Hello World")));
+			}
+			finally {
+				consumer.stop();
+			}
+		}
+
+		@Test
+		public void testFailedRequestsBackOff() throws InterruptedException {
+			DirectChannel target = new DirectChannel();
+			target.subscribe(message -> {
+				throw new MessagingException(message, "resource down");
+			});
+			List<Long> polls = new CopyOnWriteArrayList<>();
+			CountDownLatch latch = new CountDownLatch(4);
+			PollableMessageSource source = mock(PollableMessageSource.class);
+			// like DefaultPollableMessageSource: a handler failure is handled by the source
+			// (error channel, requeue) and the poll still reports a received message
+			given(source.poll(any(MessageHandler.class))).willAnswer(invocation -> {
+				polls.add(System.nanoTime());
+				latch.countDown();
+				try {
+					invocation.<MessageHandler>getArgument(0).handleMessage(new GenericMessage<Object>("missing"));
+				}
+				catch (MessagingException e) {
+					// requeued
+				}
+				return true;
+			});
+			HttpclientProcessorProperties.Pollable properties = new HttpclientProcessorProperties.Pollable();
+			properties.setIdleInterval(Duration.ofMillis(20));
+			HttpclientPollingConsumer consumer = new HttpclientPollingConsumer(source, target, properties);
+			consumer.start();
+			try {
+				assertTrue(latch.await(10, TimeUnit.SECONDS));
+			}
+			finally {
+				consumer.stop();
+			}
+			// backs off 20, 40 and 80ms; sleeping never returns early, so these are lower bounds
+			long[] expected = { 20, 40, 80 };
+			for (int i = 0; i < expected.length; i++) {
+				assertThat(TimeUnit.NANOSECONDS.toMillis(polls.get(i + 1) - polls.get(i)),
+						Matchers.greaterThanOrEqualTo(expected[i]));
+			}
+		}
+
+	}
+
+	@RunWith(SpringRunner.class)
+	@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/' + payload",
+			"httpclient.pollable.enabled=true"
+	})
+	@DirtiesContext
+	public static class TestPollableInputTests {
+
+		/**
+		 * The test binder cannot bind a {@code PollableMessageSource}, so the binding bean
+		 * registered by {@code @EnableBinding} is replaced with a mock.
+		 */
+		@MockBean(name = "org.springframework.cloud.stream.app.httpclient.processor.HttpclientPollableProcessor",
+				answer = Answers.RETURNS_DEEP_STUBS)
+		private HttpclientPollableProcessor processor;
+
+		@Autowired
+		private HttpclientPollingConsumer pollingConsumer;
+
+		@Autowired
+		@Qualifier(HttpclientProcessorConfiguration.POLLED_INPUT_CHANNEL)
+		private MessageChannel polledInput;
+
+		@Autowired
+		@Qualifier("httpClientFlow")
+		private IntegrationFlow httpClientFlow;
+
+		@Test
+		public void testPollableWiring() throws InterruptedException {
+			assertTrue(this.pollingConsumer.isRunning());
+			assertNotNull(this.httpClientFlow);
+			BlockingQueue<Message<?>> replies = new LinkedBlockingQueue<>();
+			MessageChannel output = this.processor.output();
+			given(output.send(any())).willAnswer(invocation -> replies.add(invocation.getArgument(0)));
+			given(output.send(any(), anyLong())).willAnswer(invocation -> replies.add(invocation.getArgument(0)));
+			this.polledInput.send(new GenericMessage<Object>("greet"));
+			Message<?> reply = replies.poll(10, TimeUnit.SECONDS);
+			assertNotNull(reply);
+			assertEquals("Hello World", reply.getPayload());
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression={" + BASE_URL + " + '/greet', " + BASE_URL + " + '/greet'}",
+			"httpclient.httpMethod=POST",
+			"httpclient.scatter-gather.enabled=true",
+			"httpclient.scatter-gather.replyExpression=[0].body + ', ' + [1].body"
+	})
+	public static class TestScatterGatherTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testRequest() {
+			channels.input().send(new GenericMessage<Object>("you"));
+			assertThat(messageCollector.forChannel(channels.output()),
+					receivesPayloadThat(is("Hello you, Hello you")));
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression={" + BASE_URL + " + '/slow', " + BASE_URL + " + '/slow', "
+					+ BASE_URL + " + '/slow'}",
+			"httpclient.scatter-gather.enabled=true",
+			"httpclient.scatter-gather.concurrency=1",
+			"httpclient.scatter-gather.queue-capacity=1"
+	})
+	public static class TestScatterGatherRejectedTests extends HttpClientProcessorTests {
+
+		@Autowired
+		private HttpClientProcessorApplication application;
+
+		@Test
+		public void testRequest() {
+			// the first call holds the only thread and the second fills the queue
+			try {
+				channels.input().send(new GenericMessage<Object>("..."));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(NestedExceptionUtils.getMostSpecificCause(e),
+						Matchers.instanceOf(RejectedExecutionException.class));
+			}
+			finally {
+				this.application.slowRelease.countDown();
+			}
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression={" + BASE_URL + " + '/greet', " + BASE_URL + " + '/missing'}",
+			"httpclient.httpMethod=POST",
+			"httpclient.scatter-gather.enabled=true",
+			"httpclient.scatter-gather.partialResultPolicy=PARTIAL",
+			"httpclient.scatter-gather.replyExpression=[0].body + ' ' + ([1] == null)"
+	})
+	public static class TestScatterGatherPartialResultTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testRequest() {
+			channels.input().send(new GenericMessage<Object>("you"));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("Hello you true")));
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression={" + BASE_URL + " + '/greet', " + BASE_URL + " + '/missing'}",
+			"httpclient.httpMethod=POST",
+			"httpclient.scatter-gather.enabled=true",
+			"httpclient.scatter-gather.partialResultPolicy=PARTIAL"
+	})
+	public static class TestScatterGatherPartialResultDefaultReplyTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testRequest() {
+			channels.input().send(new GenericMessage<Object>("you"));
+			assertThat(messageCollector.forChannel(channels.output()),
+					receivesPayloadThat(Matchers.allOf(containsString("Hello you"), containsString("null"))));
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/count'",
+			"httpclient.idempotency.enabled=true",
+			"httpclient.idempotency.keyExpression=payload"
+	})
+	public static class TestIdempotentRequestTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testRequest() {
+			channels.input().send(new GenericMessage<Object>("same"));
+			channels.input().send(new GenericMessage<Object>("same"));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("1")));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("1")));
+			channels.input().send(new GenericMessage<Object>("other"));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("2")));
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/count'",
+			"httpclient.idempotency.enabled=true",
+			"httpclient.idempotency.keyExpression=headers['idempotencyKey']"
+	})
+	public static class TestIdempotentRequestWithoutKeyTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testRequest() {
+			channels.input().send(new GenericMessage<Object>("same"));
+			channels.input().send(new GenericMessage<Object>("same"));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("1")));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("2")));
+		}
+
+	}
+
+	public static class MappedFileIdempotencyStoreTests {
+
+		@Rule
+		public TemporaryFolder folder = new TemporaryFolder();
+
+		@Test
+		public void testRepliesSurviveReopen() throws IOException {
+			Path file = this.folder.getRoot().toPath().resolve("replies");
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 16, 256, Duration.ofHours(1))) {
+				store.put(42L, "reply");
+			}
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 16, 256, Duration.ofHours(1))) {
+				assertEquals("reply", store.get(42L));
+			}
+		}
+
+		@Test
+		public void testDifferentLayoutIsCleared() throws IOException {
+			Path file = this.folder.getRoot().toPath().resolve("replies");
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 16, 256, Duration.ofHours(1))) {
+				store.put(42L, "reply");
+			}
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 32, 128, Duration.ofHours(1))) {
+				assertNull(store.get(42L));
+			}
+		}
+
+		@Test
+		public void testCorruptEntryIsAMiss() throws IOException {
+			Path file = this.folder.getRoot().toPath().resolve("replies");
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 1, 256, Duration.ofHours(1))) {
+				store.put(42L, "reply");
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				/* overwrite the recorded length of the only slot, right after the file and slot headers */
+				channel.write(ByteBuffer.allocate(4).putInt(0, -1), 16 + 16);
+			}
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 1, 256, Duration.ofHours(1))) {
+				assertNull(store.get(42L));
+			}
+		}
+
+		@Test
+		public void testOnlyStringAndBytesAreRecorded() throws IOException {
+			Path file = this.folder.getRoot().toPath().resolve("replies");
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 16, 256, Duration.ofHours(1))) {
+				store.put(1L, new byte[] { 1, 2, 3 });
+				store.put(2L, 42);
+				assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) store.get(1L));
+				assertNull(store.get(2L));
+			}
+		}
+
+		@Test(expected = IllegalStateException.class)
+		public void testLockedFileIsRejected() throws IOException {
+			Path file = this.folder.getRoot().toPath().resolve("replies");
+			try (MappedFileIdempotencyStore store = new MappedFileIdempotencyStore(file, 16, 256, Duration.ofHours(1))) {
+				new MappedFileIdempotencyStore(file, 16, 256, Duration.ofHours(1));
+			}
+		}
+
+	}
+
+	@TestPropertySource(properties = "httpclient.urlExpression= " + BASE_URL + " + '/' + payload")
+	public static class TestReactiveRequestTests extends HttpClientProcessorTests {
+
+		@Autowired
+		@Qualifier(HttpclientProcessorFunctionConfiguration.REACTIVE_FUNCTION_NAME)
+		private HttpclientReactiveProcessorFunction reactiveHttpRequest;
+
+		@Test
+		public void testRequest() {
+			// as with the blocking function, the payload is not sent as the body of a GET
+			List<Message<?>> replies = this.reactiveHttpRequest
+					.apply(Flux.<Message<?>>just(new GenericMessage<>("greet"), new GenericMessage<>("greet")))
+					.collectList()
+					.block(Duration.ofSeconds(10));
+			assertEquals(2, replies.size());
+			assertEquals("Hello World", replies.get(0).getPayload());
+			assertEquals("Hello World", replies.get(1).getPayload());
+		}
+
+		@Test
+		public void testFailedRequestEmitsErrorMessage() {
+			Message<?> missing = new GenericMessage<>("missing");
+			List<Message<?>> replies = this.reactiveHttpRequest
+					.apply(Flux.<Message<?>>just(new GenericMessage<>("greet"), missing,
+							new GenericMessage<>("greet")))
+					.collectList()
+					.block(Duration.ofSeconds(10));
+			assertEquals(3, replies.size());
+			List<Message<?>> errors = replies.stream()
+					.filter(ErrorMessage.class::isInstance)
+					.collect(Collectors.toList());
+			assertEquals(1, errors.size());
+			assertSame(missing, ((ErrorMessage) errors.get(0)).getOriginalMessage());
+			assertSame(missing, ((MessagingException) errors.get(0).getPayload()).getFailedMessage());
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/' + payload",
+			"httpclient.reactive.error-policy=DROP"
+	})
+	public static class TestReactiveRequestDropTests extends HttpClientProcessorTests {
+
+		@Autowired
+		@Qualifier(HttpclientProcessorFunctionConfiguration.REACTIVE_FUNCTION_NAME)
+		private HttpclientReactiveProcessorFunction reactiveHttpRequest;
+
+		@Test
+		public void testFailedRequestDoesNotTerminateReplies() {
+			List<Message<?>> replies = this.reactiveHttpRequest
+					.apply(Flux.<Message<?>>just(new GenericMessage<>("greet"), new GenericMessage<>("missing"),
+							new GenericMessage<>("greet")))
+					.collectList()
+					.block(Duration.ofSeconds(10));
+			assertEquals(2, replies.size());
+			assertEquals("Hello World", replies.get(0).getPayload());
+			assertEquals("Hello World", replies.get(1).getPayload());
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/' + payload",
+			"httpclient.reactive.timeout=200ms",
+			"httpclient.reactive.error-policy=FAIL"
+	})
+	public static class TestReactiveRequestTimeoutTests extends HttpClientProcessorTests {
+
+		@Autowired
+		@Qualifier(HttpclientProcessorFunctionConfiguration.REACTIVE_FUNCTION_NAME)
+		private HttpclientReactiveProcessorFunction reactiveHttpRequest;
+
+		@Autowired
+		private HttpClientProcessorApplication application;
+
+		@Test
+		public void testSlowResponseTimesOut() {
+			try {
+				this.reactiveHttpRequest
+						.apply(Flux.<Message<?>>just(new GenericMessage<>("slow")))
+						.blockFirst(Duration.ofSeconds(10));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(e.getCause(), Matchers.instanceOf(TimeoutException.class));
+			}
+			finally {
+				this.application.slowRelease.countDown();
+			}
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/greet'",
+			"httpclient.httpMethod=POST"
+	})
+	public static class TestReactivePOSTRequestTests extends HttpClientProcessorTests {
+
+		@Autowired
+		@Qualifier(HttpclientProcessorFunctionConfiguration.REACTIVE_FUNCTION_NAME)
+		private HttpclientReactiveProcessorFunction reactiveHttpRequest;
+
+		@Test
+		public void testRequest() {
+			Message<?> reply = this.reactiveHttpRequest
+					.apply(Flux.<Message<?>>just(new GenericMessage<>("you")))
+					.blockFirst(Duration.ofSeconds(10));
+			assertEquals("Hello you", reply.getPayload());
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/greet'",
+			"httpclient.rate-limit.enabled=true",
+			"httpclient.rate-limit.permitsPerSecond=0.1",
+			"httpclient.rate-limit.burst=1",
+			"httpclient.rate-limit.maxWait=0"
+	})
+	public static class TestRateLimitedRequestTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testRequest() {
+			channels.input().send(new GenericMessage<Object>("..."));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("Hello World")));
+			try {
+				channels.input().send(new GenericMessage<Object>("..."));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(NestedExceptionUtils.getMostSpecificCause(e).getMessage(),
+						containsString("No rate-limit permit available for 'localhost'"));
+			}
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/' + payload",
+			"httpclient.rate-limit.enabled=true",
+			"httpclient.rate-limit.keyExpression=url.path",
+			"httpclient.rate-limit.permitsPerSecond=0.1",
+			"httpclient.rate-limit.burst=1",
+			"httpclient.rate-limit.maxKeys=1",
+			"httpclient.rate-limit.maxWait=0"
+	})
+	public static class TestRateLimitedKeyEvictionTests extends HttpClientProcessorTests {
+
+		@Test
+		public void testLimitedKeyIsNotEvicted() {
+			channels.input().send(new GenericMessage<Object>("greet"));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("Hello World")));
+			// a second key exceeds max-keys, but '/greet' has no permit left and must keep its bucket
+			channels.input().send(new GenericMessage<Object>("count"));
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("1")));
+			try {
+				channels.input().send(new GenericMessage<Object>("greet"));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(NestedExceptionUtils.getMostSpecificCause(e).getMessage(),
+						containsString("No rate-limit permit available for '/greet'"));
+			}
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/throttle'",
+			"httpclient.rate-limit.enabled=true",
+			"httpclient.rate-limit.permitsPerSecond=1000",
+			"httpclient.rate-limit.maxWait=0"
+	})
+	public static class TestRateLimitedRetryAfterTests extends HttpClientProcessorTests {
+
+		@Autowired
+		private HttpClientProcessorApplication application;
+
+		@Test
+		public void testRequest() {
+			try {
+				channels.input().send(new GenericMessage<Object>("..."));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(NestedExceptionUtils.getMostSpecificCause(e).getMessage(), containsString("429"));
+			}
+			try {
+				channels.input().send(new GenericMessage<Object>("..."));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(NestedExceptionUtils.getMostSpecificCause(e).getMessage(),
+						containsString("No rate-limit permit available for 'localhost'"));
+			}
+			assertEquals(1, this.application.throttled.get());
+		}
+
+	}
+
+	@TestPropertySource(properties = {
+			"httpclient.urlExpression= " + BASE_URL + " + '/slow'",
+			"httpclient.rate-limit.enabled=true",
+			"httpclient.rate-limit.permitsPerSecond=1000",
+			"httpclient.rate-limit.maxConcurrentCalls=1",
+			"httpclient.rate-limit.maxWait=0"
+	})
+	public static class TestRateLimitedBulkheadTests extends HttpClientProcessorTests {
+
+		@Autowired
+		private HttpClientProcessorApplication application;
+
+		@Test
+		public void testRequest() throws Exception {
+			CompletableFuture<Void> first =
+					CompletableFuture.runAsync(() -> channels.input().send(new GenericMessage<Object>("...")));
+			assertTrue(this.application.slowEntered.await(10, TimeUnit.SECONDS));
+			try {
+				channels.input().send(new GenericMessage<Object>("..."));
+				fail("MessagingException expected");
+			}
+			catch (MessagingException e) {
+				assertThat(NestedExceptionUtils.getMostSpecificCause(e).getMessage(),
+						containsString("No bulkhead permit available for 'localhost'"));
+			}
+			finally {
+				this.application.slowRelease.countDown();
+			}
+			first.get(10, TimeUnit.SECONDS);
+			assertThat(messageCollector.forChannel(channels.output()), receivesPayloadThat(is("slow")));
+		}
+
+	}
+
 	@SpringBootApplication(exclude = { SecurityAutoConfiguration.class, ManagementWebSecurityAutoConfiguration.class })
 	@RestController
 	public static class HttpClientProcessorApplication {
 
+		private final AtomicInteger count = new AtomicInteger();
+
+		private final AtomicInteger throttled = new AtomicInteger();
+
+		private final CountDownLatch slowEntered = new CountDownLatch(1);
+
+		private final CountDownLatch slowRelease = new CountDownLatch(1);
+
 		@RequestMapping("/greet")
 		public String greet(@RequestBody(required = false) String who) {
 			if (who == null) {
@@ -242,6 +823,25 @@ public abstract class HttpClientProcessorTests {
 			return "id";
 		}
 
+		@RequestMapping("/count")
+		public String count() {
+			return String.valueOf(this.count.incrementAndGet());
+		}
+
+		@RequestMapping("/throttle")
+		public ResponseEntity<String> throttle() {
+			this.throttled.incrementAndGet();
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "10")
+					.body("slow down");
+		}
+
+		@RequestMapping("/slow")
+		public String slow() throws InterruptedException {
+			this.slowEntered.countDown();
+			this.slowRelease.await(10, TimeUnit.SECONDS);
+			return "slow";
+		}
+
 	}
 
 }